@@ -9,12 +9,6 @@ import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.util.QualifiedName;
-import com.jetbrains.python.codeInsight.imports.AddImportHelper;
-import com.jetbrains.python.psi.PyElementGenerator;
-import com.jetbrains.python.psi.LanguageLevel;
-import com.jetbrains.python.psi.PyImportStatement;
-import com.jetbrains.python.psi.PyImportStatementBase;
-import com.jetbrains.python.psi.PyFromImportStatement;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -45,12 +39,12 @@ public class CustomFormatImportFix extends LocalQuickFixOnPsiElement implements
 
         // Determine the custom format (replace with actual logic based on settings/rules)
         if ("*".equals(elementName)) {
-            this.customFormatString = "from {} import *  # custom rule"; 
+            this.customFormatString = "from {} import *  " + CustomRuleImports.MARKER;
         } else if (this.importPath == null) {
-            this.customFormatString = "import {}  # custom rule"; // Format for top-level import
+            this.customFormatString = "import {}  " + CustomRuleImports.MARKER; // Format for top-level import
         }
         else {
-            this.customFormatString = "from {} import {}  # custom rule";
+            this.customFormatString = "from {} import {}  " + CustomRuleImports.MARKER;
         }
         
         LOG.debug("CustomFormatImportFix created for element: " + element.getText() + 
@@ -108,7 +102,6 @@ public class CustomFormatImportFix extends LocalQuickFixOnPsiElement implements
              LOG.warn("Element is no longer valid in performImport.");
              return;
         }
-        Project project = element.getProject();
         PsiFile file = element.getContainingFile();
 
         if (file == null) {
@@ -145,57 +138,14 @@ public class CustomFormatImportFix extends LocalQuickFixOnPsiElement implements
 
         LOG.debug("Generated import statement text: " + importStatementText);
         
-        // Add the import statement using AddImportHelper for correct placement
-        // Fix for error #1: USER_IMPORT doesn't exist in your version, using NORMAL instead
-        // AddImportHelper.ImportPriority priority = AddImportHelper.ImportPriority.USER_IMPORT;
-        
-        // It seems AddImportHelper doesn't directly take a raw string. 
-        // We need to create a PSI element for the import statement first.
-        PyElementGenerator elementGenerator = PyElementGenerator.getInstance(project);
+        // Insert the full line rather than a generated statement so the marker comment survives;
+        // CustomImportOptimizer relies on it to recognize the imports added here.
         try {
-            // Fix for error #2: Use the correct method to create an import statement
-            // The createImportStatementFromText doesn't exist in your version
-            PyImportStatementBase newImportStmt;
-            
-            // Create the appropriate type of import statement based on the format
-            if (importPath == null) {
-                // Simple import: "import modulename"
-                newImportStmt = elementGenerator.createFromText(
-                    LanguageLevel.forElement(file),
-                    PyImportStatement.class,
-                    importStatementText
-                );
-            } else {
-                // From import: "from module import name"
-                newImportStmt = elementGenerator.createFromText(
-                    LanguageLevel.forElement(file),
-                    PyFromImportStatement.class,
-                    importStatementText
-                );
-            }
-            
-            if (newImportStmt == null) {
-                LOG.error("Failed to generate PSI for import statement: " + importStatementText);
-                return;
-            }
-            
-            LOG.debug("Generated PSI Import Statement: " + newImportStmt.getText());
-
-            // Fix for error #3: The addImport signature we tried doesn't exist either
-            // Let's directly add the import statement to the file
-            PsiElement anchor = AddImportHelper.getFileInsertPosition(file);
-            if (anchor != null) {
-                file.addBefore(newImportStmt, anchor);
-                LOG.info("Successfully added import statement through manual insertion.");
-            } else {
-                // If we can't find a good position, add it to the beginning
-                file.addAfter(newImportStmt, file.getFirstChild());
-                LOG.info("Added import at the beginning of the file.");
-            }
-
+            CustomRuleImports.insertImportText(file, importStatementText + "\n");
+            LOG.info("Successfully added import statement: " + importStatementText);
         } catch (Exception e) {
-            // Catch broader exceptions during PSI generation or adding
-            LOG.error("Error generating or adding import statement: " + importStatementText, e);
+            // Catch broader exceptions during parsing or adding
+            LOG.error("Error adding import statement: " + importStatementText, e);
         }
     }
 
@@ -0,0 +1,148 @@
+package com.liuhao.customimport;
+
+import com.intellij.psi.PsiComment;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiWhiteSpace;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.jetbrains.python.codeInsight.imports.AddImportHelper;
+import com.jetbrains.python.psi.LanguageLevel;
+import com.jetbrains.python.psi.PyElementGenerator;
+import com.jetbrains.python.psi.PyFromImportStatement;
+import com.jetbrains.python.psi.PyImportElement;
+import com.jetbrains.python.psi.PyImportStatementBase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for recognizing, removing and inserting the import statements written by
+ * {@link CustomFormatImportFix}. Those statements are tagged with a trailing {@link #MARKER} comment.
+ */
+public final class CustomRuleImports {
+
+    public static final String MARKER = "# custom rule";
+
+    private CustomRuleImports() {
+    }
+
+    /**
+     * Returns the top-level import statements of the file that carry the custom rule marker, in file order.
+     */
+    @NotNull
+    public static List<PyImportStatementBase> findCustomRuleImports(@NotNull PsiFile file) {
+        List<PyImportStatementBase> result = new ArrayList<>();
+        for (PyImportStatementBase statement : PsiTreeUtil.getChildrenOfTypeAsList(file, PyImportStatementBase.class)) {
+            if (findMarker(statement) != null) {
+                result.add(statement);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the marker comment on the same line as the statement, either inside it or right after it.
+     */
+    @Nullable
+    public static PsiComment findMarker(@NotNull PyImportStatementBase statement) {
+        if (statement.getLastChild() instanceof PsiComment && isMarker(statement.getLastChild())) {
+            return (PsiComment) statement.getLastChild();
+        }
+        PsiElement next = statement.getNextSibling();
+        while (next instanceof PsiWhiteSpace && !next.textContains('\n')) {
+            next = next.getNextSibling();
+        }
+        return next instanceof PsiComment && isMarker(next) ? (PsiComment) next : null;
+    }
+
+    /**
+     * Returns the statement text together with its marker comment, exactly as written in the file.
+     */
+    @NotNull
+    public static String getTextWithMarker(@NotNull PyImportStatementBase statement) {
+        PsiComment marker = findMarker(statement);
+        if (marker == null || marker.getParent() == statement) {
+            return statement.getText();
+        }
+        StringBuilder text = new StringBuilder();
+        for (PsiElement element = statement; element != null; element = element.getNextSibling()) {
+            text.append(element.getText());
+            if (element == marker) {
+                break;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Deletes the statement, its marker comment and the line break that follows them.
+     */
+    public static void delete(@NotNull PyImportStatementBase statement) {
+        PsiComment marker = findMarker(statement);
+        PsiElement last = marker != null && marker.getParent() != statement ? marker : statement;
+        if (last.getNextSibling() instanceof PsiWhiteSpace) {
+            last = last.getNextSibling();
+        }
+        statement.getParent().deleteChildRange(statement, last);
+    }
+
+    /**
+     * Parses the given import lines and inserts them, comments included, at the usual import position of the file.
+     */
+    public static void insertImportText(@NotNull PsiFile file, @NotNull String importText) {
+        PsiElement anchor = AddImportHelper.getFileInsertPosition(file);
+        if (anchor != null) {
+            insertBefore(anchor, importText);
+            return;
+        }
+        PsiFile dummyFile = createDummyFile(file, importText);
+        if (dummyFile.getFirstChild() != null) {
+            file.addRange(dummyFile.getFirstChild(), dummyFile.getLastChild());
+        }
+    }
+
+    /**
+     * Inserts the given import lines before the anchor; the text should end with a line break.
+     */
+    public static void insertBefore(@NotNull PsiElement anchor, @NotNull String importText) {
+        PsiFile dummyFile = createDummyFile(anchor.getContainingFile(), importText);
+        if (dummyFile.getFirstChild() != null) {
+            anchor.getParent().addRangeBefore(dummyFile.getFirstChild(), dummyFile.getLastChild(), anchor);
+        }
+    }
+
+    /**
+     * Inserts the given import lines after the anchor; the text should start with a line break.
+     */
+    public static void insertAfter(@NotNull PsiElement anchor, @NotNull String importText) {
+        PsiFile dummyFile = createDummyFile(anchor.getContainingFile(), importText);
+        if (dummyFile.getFirstChild() != null) {
+            anchor.getParent().addRangeAfter(dummyFile.getFirstChild(), dummyFile.getLastChild(), anchor);
+        }
+    }
+
+    /**
+     * Describes what an import element binds, e.g. {@code "from 0 a.b import c as c"}, so the same import
+     * can be recognized after another optimizer has rewritten the statement it lives in.
+     */
+    @NotNull
+    public static String getBindingKey(@NotNull PyImportStatementBase statement, @NotNull PyImportElement element) {
+        String source = "import";
+        if (statement instanceof PyFromImportStatement) {
+            PyFromImportStatement fromImport = (PyFromImportStatement) statement;
+            source = "from " + fromImport.getRelativeLevel() + " " + fromImport.getImportSourceQName();
+        }
+        return source + " " + element.getImportedQName() + " as " + element.getVisibleName();
+    }
+
+    @NotNull
+    private static PsiFile createDummyFile(@NotNull PsiFile file, @NotNull String text) {
+        return PyElementGenerator.getInstance(file.getProject()).createDummyFile(LanguageLevel.forElement(file), text);
+    }
+
+    private static boolean isMarker(@NotNull PsiElement comment) {
+        return MARKER.equals(comment.getText().trim());
+    }
+}
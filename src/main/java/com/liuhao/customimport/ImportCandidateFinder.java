@@ -10,6 +10,8 @@ import com.jetbrains.python.psi.PyFile;
 import com.jetbrains.python.psi.resolve.QualifiedNameFinder;
 import org.jetbrains.annotations.NotNull;
 import com.intellij.openapi.diagnostic.Logger;
+import com.liuhao.customimport.snapshot.CandidateSnapshot;
+import com.liuhao.customimport.snapshot.CandidateSnapshotService;
 
 
 import java.util.ArrayList;
@@ -26,6 +28,25 @@ public class ImportCandidateFinder {
 
         LOG.debug("Searching for import candidates for: " + referenceName);
 
+        // 0. Prefer the candidate snapshot when one is loaded, it is kept in sync with changed files.
+        // It only maps names to paths; qualified names are computed here against this machine's roots.
+        CandidateSnapshotService snapshotService = CandidateSnapshotService.getInstance(project);
+        if (snapshotService.isLoaded()) {
+            for (CandidateSnapshot.Entry entry : snapshotService.findEntries(referenceName)) {
+                PsiFileSystemItem item = snapshotService.findItem(entry);
+                if (item != null) {
+                    addCandidate(item, candidates, entry.getPath());
+                }
+            }
+            LOG.debug("Found " + candidates.size() + " snapshot candidates for " + referenceName);
+
+            // Content roots outside the project base directory are not in the snapshot
+            scope = snapshotService.getUncoveredScope();
+            if (scope == null) {
+                return candidates;
+            }
+        }
+
         // 1. Look for modules (files like referenceName.py)
         PsiFile[] filesArray = FilenameIndex.getFilesByName(project, referenceName + ".py", scope);
         LOG.debug("Found " + filesArray.length + " files for name: " + referenceName + ".py");
@@ -0,0 +1,231 @@
+package com.liuhao.customimport.imports;
+
+import com.intellij.lang.ImportOptimizer;
+import com.intellij.lang.LanguageImportStatements;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.EmptyRunnable;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiComment;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiWhiteSpace;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.jetbrains.python.psi.PyFile;
+import com.jetbrains.python.psi.PyImportElement;
+import com.jetbrains.python.psi.PyImportStatementBase;
+import com.jetbrains.python.psi.PyStatement;
+import com.jetbrains.python.psi.PyStringLiteralExpression;
+import com.liuhao.customimport.CustomFormatImportFix;
+import com.liuhao.customimport.CustomRuleImports;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optimize Imports support for imports added by {@link CustomFormatImportFix}.
+ * The default Python optimizer runs first and decides which imports are used. Custom rule imports it
+ * kept are left alone, custom rule imports it rewrote are restored verbatim near their original place,
+ * and the ones it removed stay removed.
+ * <p>
+ * A file whose last optimization changed nothing is skipped entirely until it is modified again, so
+ * optimizing on save stays cheap. The price is that changes outside the file, such as a module becoming
+ * unresolvable or a different import sorting code style, are only picked up once the file itself changes.
+ */
+public class CustomImportOptimizer implements ImportOptimizer {
+
+    private static final Logger LOG = Logger.getInstance(CustomImportOptimizer.class);
+
+    // Modification stamp of the file after an optimization that made no changes
+    private static final Key<Long> CLEAN_STAMP = Key.create("customImport.cleanStamp");
+
+    @Override
+    public boolean supports(@NotNull PsiFile file) {
+        return file instanceof PyFile;
+    }
+
+    @NotNull
+    @Override
+    public Runnable processFile(@NotNull PsiFile file) {
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile != null && Long.valueOf(file.getModificationStamp()).equals(virtualFile.getUserData(CLEAN_STAMP))) {
+            LOG.debug("File unchanged since an optimization that changed nothing, skipping: " + file.getName());
+            return EmptyRunnable.getInstance();
+        }
+
+        // The delegate's analysis runs here, in the read phase; the returned runnable only applies results
+        ImportOptimizer delegate = findDelegate(file);
+        Runnable delegateRunnable = delegate != null ? delegate.processFile(file) : EmptyRunnable.getInstance();
+
+        List<CustomImport> customImports = new ArrayList<>();
+        for (PyImportStatementBase statement : CustomRuleImports.findCustomRuleImports(file)) {
+            customImports.add(new CustomImport(statement));
+        }
+
+        return () -> {
+            PsiModificationTracker tracker = PsiManager.getInstance(file.getProject()).getModificationTracker();
+            long modificationCount = tracker.getModificationCount();
+            delegateRunnable.run();
+            if (!customImports.isEmpty()) {
+                reconcile(file, customImports);
+            }
+            if (virtualFile != null && tracker.getModificationCount() == modificationCount) {
+                virtualFile.putUserData(CLEAN_STAMP, file.getModificationStamp());
+            }
+        };
+    }
+
+    /**
+     * Restores the custom imports the delegate rewrote. Those it removed were unused and stay removed;
+     * those it left alone are not moved.
+     */
+    private static void reconcile(@NotNull PsiFile file, @NotNull List<CustomImport> customImports) {
+        Set<String> survivingBindings = new HashSet<>();
+        for (PyImportStatementBase statement : PsiTreeUtil.getChildrenOfTypeAsList(file, PyImportStatementBase.class)) {
+            for (PyImportElement element : statement.getImportElements()) {
+                survivingBindings.add(CustomRuleImports.getBindingKey(statement, element));
+            }
+        }
+
+        Set<PyImportStatementBase> untouched = new HashSet<>();
+        Set<String> rewrittenBindings = new HashSet<>();
+        List<CustomImport> toRestore = new ArrayList<>();
+        for (CustomImport customImport : customImports) {
+            if (customImport.isIntact()) {
+                untouched.add(customImport.statement);
+                continue;
+            }
+            if (customImport.marker != null && customImport.marker.isValid() && !customImport.statement.isValid()) {
+                customImport.marker.delete();
+            }
+            if (!Collections.disjoint(customImport.bindings, survivingBindings)) {
+                // Still imported in some rewritten form, so the delegate considers it used
+                rewrittenBindings.addAll(customImport.bindings);
+                toRestore.add(customImport);
+            } else {
+                LOG.debug("Custom import removed as unused by the default optimizer: " + customImport.text);
+            }
+        }
+        if (toRestore.isEmpty()) {
+            return;
+        }
+
+        for (PyImportStatementBase statement : PsiTreeUtil.getChildrenOfTypeAsList(file, PyImportStatementBase.class)) {
+            if (!untouched.contains(statement)) {
+                removeBindings(statement, rewrittenBindings);
+            }
+        }
+
+        Map<PsiElement, StringBuilder> textByAnchor = new LinkedHashMap<>();
+        StringBuilder topText = new StringBuilder();
+        for (CustomImport customImport : toRestore) {
+            LOG.debug("Restoring custom import rewritten by the default optimizer: " + customImport.text);
+            if (customImport.anchor != null && customImport.anchor.isValid()) {
+                textByAnchor.computeIfAbsent(customImport.anchor, k -> new StringBuilder())
+                        .append('\n').append(customImport.text);
+            } else {
+                topText.append(customImport.text).append('\n');
+            }
+        }
+        for (Map.Entry<PsiElement, StringBuilder> entry : textByAnchor.entrySet()) {
+            CustomRuleImports.insertAfter(endOfLine(entry.getKey()), entry.getValue().toString());
+        }
+        if (topText.length() > 0) {
+            CustomRuleImports.insertImportText(file, topText.toString());
+        }
+    }
+
+    private static void removeBindings(@NotNull PyImportStatementBase statement, @NotNull Set<String> bindings) {
+        PyImportElement[] elements = statement.getImportElements();
+        List<PyImportElement> matching = new ArrayList<>();
+        for (PyImportElement element : elements) {
+            if (bindings.contains(CustomRuleImports.getBindingKey(statement, element))) {
+                matching.add(element);
+            }
+        }
+        if (matching.isEmpty()) {
+            return;
+        }
+        if (matching.size() == elements.length) {
+            CustomRuleImports.delete(statement);
+        } else {
+            for (PyImportElement element : matching) {
+                element.delete();
+            }
+        }
+    }
+
+    /**
+     * Skips comments on the same line, so text inserted after the result starts on the next line.
+     */
+    @NotNull
+    private static PsiElement endOfLine(@NotNull PsiElement element) {
+        PsiElement next = element.getNextSibling();
+        while (next instanceof PsiComment || next instanceof PsiWhiteSpace && !next.textContains('\n')) {
+            if (next instanceof PsiComment) {
+                element = next;
+            }
+            next = next.getNextSibling();
+        }
+        return element;
+    }
+
+    @Nullable
+    private static ImportOptimizer findDelegate(@NotNull PsiFile file) {
+        for (ImportOptimizer optimizer : LanguageImportStatements.INSTANCE.allForLanguage(file.getLanguage())) {
+            if (!(optimizer instanceof CustomImportOptimizer) && optimizer.supports(file)) {
+                return optimizer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A custom rule import as it was before the delegate ran.
+     */
+    private static final class CustomImport {
+        private final PyImportStatementBase statement;
+        private final PsiComment marker;
+        private final String text;
+        private final Set<String> bindings = new HashSet<>();
+        // Closest preceding non-import statement (e.g. a sys.path setup call), null for the top of the file
+        private final PsiElement anchor;
+
+        CustomImport(@NotNull PyImportStatementBase statement) {
+            this.statement = statement;
+            this.marker = CustomRuleImports.findMarker(statement);
+            this.text = CustomRuleImports.getTextWithMarker(statement);
+            this.anchor = findAnchor(statement);
+            for (PyImportElement element : statement.getImportElements()) {
+                bindings.add(CustomRuleImports.getBindingKey(statement, element));
+            }
+        }
+
+        boolean isIntact() {
+            return statement.isValid() && text.equals(CustomRuleImports.getTextWithMarker(statement));
+        }
+
+        @Nullable
+        private static PsiElement findAnchor(@NotNull PyImportStatementBase statement) {
+            PsiElement previous = statement.getPrevSibling();
+            while (previous != null && (!(previous instanceof PyStatement) || previous instanceof PyImportStatementBase)) {
+                previous = previous.getPrevSibling();
+            }
+            if (previous == null) {
+                return null;
+            }
+            // Imports right after the docstring go through the regular insert position, which respects __future__ imports
+            PyStringLiteralExpression docString = ((PyFile) statement.getContainingFile()).getDocStringExpression();
+            return docString != null && PsiTreeUtil.isAncestor(previous, docString, false) ? null : previous;
+        }
+    }
+}
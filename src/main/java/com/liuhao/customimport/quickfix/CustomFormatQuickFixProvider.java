@@ -36,11 +36,7 @@ public class CustomFormatQuickFixProvider implements PyUnresolvedReferenceQuickF
 
         PyReferenceExpression referenceExpression = (PyReferenceExpression) psiReference.getElement();
         
-        // Skip any references that are already resolved
-        if (psiReference.resolve() != null) {
-            LOG.debug("Reference already resolved, skipping: " + referenceExpression.getText());
-            return;
-        }
+        // The platform only calls us for unresolved references, so there is no need to resolve again
 
         String referenceName = referenceExpression.getReferencedName();
         if (referenceName == null) {
@@ -48,6 +44,11 @@ public class CustomFormatQuickFixProvider implements PyUnresolvedReferenceQuickF
             return;
         }
 
+        // Cheap pre-filter before the candidate search: drop names no special directory rule can match
+        if (!SpecialDirectoryPreFilter.mayMatch(referenceExpression, referenceName)) {
+            return;
+        }
+
         Project project = referenceExpression.getProject();
         LOG.info("Processing unresolved reference: " + referenceName + " in " + 
                 (referenceExpression.getContainingFile() != null ? 
@@ -0,0 +1,56 @@
+package com.liuhao.customimport.quickfix;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Bloom filter over module names. A negative answer is definite, a positive one may be a false positive.
+ * Sized for roughly a 1% false positive rate.
+ */
+final class NameBloomFilter {
+
+    private static final int BITS_PER_NAME = 10;
+    private static final int HASH_COUNT = 7;
+
+    private final BitSet bits;
+    private final int size;
+
+    NameBloomFilter(@NotNull Collection<String> names) {
+        this.size = Math.max(64, names.size() * BITS_PER_NAME);
+        this.bits = new BitSet(size);
+        for (String name : names) {
+            int h1 = name.hashCode();
+            int h2 = secondHash(name);
+            for (int i = 0; i < HASH_COUNT; i++) {
+                bits.set(index(h1, h2, i));
+            }
+        }
+    }
+
+    boolean mightContain(@NotNull String name) {
+        int h1 = name.hashCode();
+        int h2 = secondHash(name);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            if (!bits.get(index(h1, h2, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(int h1, int h2, int i) {
+        return Math.floorMod(h1 + i * h2, size);
+    }
+
+    // FNV-1a, independent enough from String.hashCode for double hashing
+    private static int secondHash(@NotNull String name) {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash | 1;
+    }
+}
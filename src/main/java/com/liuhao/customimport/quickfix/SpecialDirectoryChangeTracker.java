@@ -0,0 +1,111 @@
+package com.liuhao.customimport.quickfix;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.SimpleModificationTracker;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.liuhao.customimport.settings.CustomImportSettingsState;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Counts structural changes (create, delete, move, rename) of Python files and directories below the
+ * special directories of a project. Changes anywhere else, such as build output or other projects,
+ * do not touch the counter.
+ * <p>
+ * An empty special directory entry stands for the roots themselves, which makes every structural change of
+ * a Python file in the project content count.
+ */
+public final class SpecialDirectoryChangeTracker extends SimpleModificationTracker implements Disposable {
+
+    private final Project project;
+
+    public SpecialDirectoryChangeTracker(@NotNull Project project) {
+        this.project = project;
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void before(@NotNull List<? extends VFileEvent> events) {
+                // Deleted and moved files are still in place here
+                checkEvents(events);
+            }
+
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                checkEvents(events);
+            }
+        });
+    }
+
+    public static SpecialDirectoryChangeTracker getInstance(@NotNull Project project) {
+        return project.getService(SpecialDirectoryChangeTracker.class);
+    }
+
+    /**
+     * Returns the project-wide directories whose contents the special directory rules cover. Directories
+     * below another returned directory, such as a source root inside a content root, are left out.
+     */
+    @NotNull
+    static List<VirtualFile> getSpecialDirectories(@NotNull Project project) {
+        ProjectRootManager rootManager = ProjectRootManager.getInstance(project);
+        Set<VirtualFile> roots = new LinkedHashSet<>(Arrays.asList(rootManager.getContentRoots()));
+        roots.addAll(Arrays.asList(rootManager.getContentSourceRoots()));
+
+        List<VirtualFile> result = new ArrayList<>();
+        for (VirtualFile root : roots) {
+            for (String dir : CustomImportSettingsState.getInstance().getSpecialDirectoriesList()) {
+                VirtualFile start = dir.isEmpty() ? root : root.findFileByRelativePath(dir);
+                if (start != null && start.isDirectory()) {
+                    result.add(start);
+                }
+            }
+        }
+        result.removeIf(start -> result.stream().anyMatch(other -> VfsUtilCore.isAncestor(other, start, true)));
+        return result;
+    }
+
+    private void checkEvents(@NotNull List<? extends VFileEvent> events) {
+        List<VirtualFile> specialDirectories = null;
+        for (VFileEvent event : events) {
+            if (event instanceof VFileContentChangeEvent
+                    || event instanceof VFilePropertyChangeEvent && !((VFilePropertyChangeEvent) event).isRename()) {
+                continue;
+            }
+            // For copies the event file is the source, the copy only exists after the event
+            VirtualFile file = event instanceof VFileCopyEvent
+                    ? ((VFileCopyEvent) event).findCreatedFile()
+                    : event.getFile();
+            if (file == null || !file.isValid() || !(file.isDirectory() || "py".equals(file.getExtension()))
+                    || !ProjectFileIndex.getInstance(project).isInContent(file)) {
+                continue;
+            }
+            if (specialDirectories == null) {
+                specialDirectories = getSpecialDirectories(project);
+            }
+            for (VirtualFile dir : specialDirectories) {
+                // Below a special directory, or a special directory (or one of its parents) itself came or went
+                if (VfsUtilCore.isAncestor(dir, file, true) || VfsUtilCore.isAncestor(file, dir, false)) {
+                    incModificationCount();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
@@ -0,0 +1,110 @@
+package com.liuhao.customimport.quickfix;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.jetbrains.python.psi.PyReferenceExpression;
+import com.liuhao.customimport.settings.CustomImportSettingsState;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cheap first stage of {@link CustomFormatQuickFixProvider}: rejects references that no special directory
+ * rule can match before the candidate search runs.
+ * <p>
+ * A reference is rejected when no special directories are configured, or when its name is not in the
+ * bloom filter of module and package names found under the special directories. The filter is cached per
+ * project and rebuilt after files are added, removed or renamed below a special directory, after root
+ * changes, or after settings changes.
+ */
+final class SpecialDirectoryPreFilter {
+
+    private static final Logger LOG = Logger.getInstance(SpecialDirectoryPreFilter.class);
+
+    private static final Key<CachedValue<NameBloomFilter>> FILTER_KEY = Key.create("customImport.specialDirectoryNames");
+
+    private static final long REPORT_INTERVAL = 1000;
+
+    private static final AtomicLong checkedCount = new AtomicLong();
+    private static final AtomicLong rejectedCount = new AtomicLong();
+
+    private SpecialDirectoryPreFilter() {
+    }
+
+    /**
+     * Returns false if no special directory candidate in the project content can exist for the reference.
+     */
+    static boolean mayMatch(@NotNull PyReferenceExpression reference, @NotNull String referenceName) {
+        boolean result = check(reference, referenceName);
+        long checked = checkedCount.incrementAndGet();
+        long rejected = result ? rejectedCount.get() : rejectedCount.incrementAndGet();
+        if (checked % REPORT_INTERVAL == 0) {
+            LOG.info("Special directory pre-filter rejected " + rejected + " of " + checked
+                    + " references (" + String.format("%.1f", getRejectionRate() * 100) + "%)");
+        }
+        return result;
+    }
+
+    static double getRejectionRate() {
+        long checked = checkedCount.get();
+        return checked == 0 ? 0 : (double) rejectedCount.get() / checked;
+    }
+
+    private static boolean check(@NotNull PyReferenceExpression reference, @NotNull String referenceName) {
+        if (CustomImportSettingsState.getInstance().getSpecialDirectoriesList().isEmpty()) {
+            LOG.debug("No special directories configured, rejecting: " + referenceName);
+            return false;
+        }
+
+        if (!getFilter(reference.getProject()).mightContain(referenceName)) {
+            LOG.debug("Name not under any special directory, rejecting: " + referenceName);
+            return false;
+        }
+        return true;
+    }
+
+    @NotNull
+    private static NameBloomFilter getFilter(@NotNull Project project) {
+        return CachedValuesManager.getManager(project).getCachedValue(project, FILTER_KEY, () ->
+                CachedValueProvider.Result.create(buildFilter(project),
+                        SpecialDirectoryChangeTracker.getInstance(project),
+                        ProjectRootManager.getInstance(project),
+                        CustomImportSettingsState.getInstance()), false);
+    }
+
+    /**
+     * Collects names of everything below each special directory, relative to every content and source root.
+     * This covers what a rule can match within the project content. Special directories reachable only through
+     * interpreter paths, which the candidate search also considers, are not walked, so names found only there
+     * are rejected. An empty special directory entry makes this a walk of the whole project content.
+     */
+    @NotNull
+    private static NameBloomFilter buildFilter(@NotNull Project project) {
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        Set<String> names = new HashSet<>();
+        for (VirtualFile start : SpecialDirectoryChangeTracker.getSpecialDirectories(project)) {
+            fileIndex.iterateContentUnderDirectory(start, file -> {
+                if (file.equals(start)) {
+                    return true;
+                }
+                if (file.isDirectory()) {
+                    names.add(file.getName());
+                } else if ("py".equals(file.getExtension())) {
+                    names.add(file.getNameWithoutExtension());
+                }
+                return true;
+            });
+        }
+        LOG.debug("Built special directory name filter with " + names.size() + " names");
+        return new NameBloomFilter(names);
+    }
+}
@@ -7,6 +7,7 @@ import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,6 +16,7 @@ import java.util.List;
  */
 public class CustomImportSettingsConfigurable implements Configurable {
     private CustomImportSettingsPanel myPanel;
+    private JTextField mySnapshotPathField;
 
     @Nls(capitalization = Nls.Capitalization.Title)
     @Override
@@ -26,7 +28,18 @@ public class CustomImportSettingsConfigurable implements Configurable {
     @Override
     public JComponent createComponent() {
         myPanel = new CustomImportSettingsPanel();
-        return myPanel;
+        mySnapshotPathField = new JTextField();
+        mySnapshotPathField.setToolTipText("<html>Binary snapshot of import candidates, loaded when a project opens.<br>" +
+                "Relative paths are resolved against the project directory</html>");
+
+        JPanel snapshotPanel = new JPanel(new BorderLayout(5, 0));
+        snapshotPanel.add(new JLabel("Candidate snapshot file:"), BorderLayout.WEST);
+        snapshotPanel.add(mySnapshotPathField, BorderLayout.CENTER);
+
+        JPanel root = new JPanel(new BorderLayout(0, 5));
+        root.add(myPanel, BorderLayout.CENTER);
+        root.add(snapshotPanel, BorderLayout.SOUTH);
+        return root;
     }
 
     @Override
@@ -35,7 +48,8 @@ public class CustomImportSettingsConfigurable implements Configurable {
             return false;
         }
         CustomImportSettingsState settings = CustomImportSettingsState.getInstance();
-        return !myPanel.getDirectories().equals(settings.getSpecialDirectoriesList());
+        return !myPanel.getDirectories().equals(settings.getSpecialDirectoriesList())
+                || !mySnapshotPathField.getText().equals(settings.getCandidateSnapshotPath());
     }
 
     @Override
@@ -43,6 +57,7 @@ public class CustomImportSettingsConfigurable implements Configurable {
         if (myPanel != null) {
             CustomImportSettingsState settings = CustomImportSettingsState.getInstance();
             settings.setSpecialDirectoriesList(new ArrayList<>(myPanel.getDirectories()));
+            settings.setCandidateSnapshotPath(mySnapshotPathField.getText());
         }
     }
 
@@ -51,12 +66,14 @@ public class CustomImportSettingsConfigurable implements Configurable {
         if (myPanel != null) {
             CustomImportSettingsState settings = CustomImportSettingsState.getInstance();
             myPanel.setDirectories(new ArrayList<>(settings.getSpecialDirectoriesList()));
+            mySnapshotPathField.setText(settings.getCandidateSnapshotPath());
         }
     }
 
     @Override
     public void disposeUIResources() {
         myPanel = null;
+        mySnapshotPathField = null;
     }
 
     /**
@@ -1,6 +1,8 @@
 package com.liuhao.customimport.settings;
 
 import com.intellij.openapi.components.*;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.util.xmlb.annotations.Transient;
 import com.intellij.util.xmlb.XmlSerializerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -16,9 +18,13 @@ import java.util.List;
     name = "CustomImportSettings",
     storages = {@Storage("customImportSettings.xml")}
 )
-public class CustomImportSettingsState implements PersistentStateComponent<CustomImportSettingsState> {
+public class CustomImportSettingsState implements PersistentStateComponent<CustomImportSettingsState>, ModificationTracker {
     // List of directory paths where custom import format should be applied
     private List<String> specialDirectoriesList = new ArrayList<>();
+    // Candidate snapshot file, absolute or relative to the project base directory
+    private String candidateSnapshotPath = ".idea/customImportCandidates.snapshot";
+    // Bumped whenever the special directories change, so caches derived from them are dropped
+    private long modificationCount;
 
     // Default settings
     public CustomImportSettingsState() {
@@ -44,6 +50,13 @@ public class CustomImportSettingsState implements PersistentStateComponent<Custo
     @Override
     public void loadState(@NotNull CustomImportSettingsState state) {
         XmlSerializerUtil.copyBean(state, this);
+        modificationCount++;
+    }
+
+    @Transient
+    @Override
+    public long getModificationCount() {
+        return modificationCount;
     }
 
     /**
@@ -59,6 +72,22 @@ public class CustomImportSettingsState implements PersistentStateComponent<Custo
      */
     public void setSpecialDirectoriesList(@NotNull List<String> specialDirectoriesList) {
         this.specialDirectoriesList = specialDirectoriesList;
+        modificationCount++;
+    }
+
+    /**
+     * Gets the path of the candidate snapshot loaded at startup and written by the export action
+     */
+    @NotNull
+    public String getCandidateSnapshotPath() {
+        return candidateSnapshotPath;
+    }
+
+    /**
+     * Sets the path of the candidate snapshot
+     */
+    public void setCandidateSnapshotPath(@NotNull String candidateSnapshotPath) {
+        this.candidateSnapshotPath = candidateSnapshotPath;
     }
 
     /**
@@ -67,6 +96,7 @@ public class CustomImportSettingsState implements PersistentStateComponent<Custo
     public void addSpecialDirectory(@NotNull String directoryPath) {
         if (!specialDirectoriesList.contains(directoryPath)) {
             specialDirectoriesList.add(directoryPath);
+            modificationCount++;
         }
     }
 
@@ -74,6 +104,8 @@ public class CustomImportSettingsState implements PersistentStateComponent<Custo
      * Removes a directory from the list
      */
     public void removeSpecialDirectory(@NotNull String directoryPath) {
-        specialDirectoriesList.remove(directoryPath);
+        if (specialDirectoriesList.remove(directoryPath)) {
+            modificationCount++;
+        }
     }
 } 
\ No newline at end of file
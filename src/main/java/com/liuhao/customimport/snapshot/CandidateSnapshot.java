@@ -0,0 +1,158 @@
+package com.liuhao.customimport.snapshot;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Module name to file path data used by {@link com.liuhao.customimport.ImportCandidateFinder}, keyed by the
+ * repository revision it was built from. Entries are stored per project-relative file path so that
+ * changed files can be replaced one by one. Qualified names are not stored, since they depend on the
+ * source roots and interpreter paths of the machine that uses the snapshot.
+ * <p>
+ * Not thread safe, callers synchronize access.
+ */
+public final class CandidateSnapshot {
+
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int MAGIC = 0x43494D53; // "CIMS"
+
+    private final String revision;
+    // Sorted so that everything below a directory is one contiguous range
+    private final NavigableMap<String, Entry> entriesByPath = new TreeMap<>();
+    private final Map<String, List<Entry>> entriesByName = new HashMap<>();
+
+    public CandidateSnapshot(@NotNull String revision) {
+        this.revision = revision;
+    }
+
+    @NotNull
+    public String getRevision() {
+        return revision;
+    }
+
+    public int size() {
+        return entriesByPath.size();
+    }
+
+    @NotNull
+    public List<Entry> findByName(@NotNull String name) {
+        return entriesByName.getOrDefault(name, Collections.emptyList());
+    }
+
+    public void put(@NotNull Entry entry) {
+        removePath(entry.getPath());
+        entriesByPath.put(entry.getPath(), entry);
+        entriesByName.computeIfAbsent(entry.getName(), k -> new ArrayList<>()).add(entry);
+    }
+
+    /**
+     * Removes the entry for the given path, and for anything below it when the path is a directory.
+     */
+    public void removePath(@NotNull String path) {
+        removeEntry(entriesByPath.remove(path));
+        if (path.endsWith(".py")) {
+            return;
+        }
+        // '0' is the character after '/', so this range holds exactly the paths starting with path + "/"
+        Map<String, Entry> below = entriesByPath.subMap(path + "/", path + "0");
+        for (Entry entry : below.values()) {
+            removeEntry(entry);
+        }
+        below.clear();
+    }
+
+    private void removeEntry(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        List<Entry> sameName = entriesByName.get(entry.getName());
+        if (sameName != null) {
+            sameName.remove(entry);
+            if (sameName.isEmpty()) {
+                entriesByName.remove(entry.getName());
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot as gzipped binary: magic, format version, revision, then one record per entry.
+     */
+    public void write(@NotNull Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Collection<Entry> entries = entriesByPath.values();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(revision);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.getPath());
+                out.writeUTF(entry.getName());
+            }
+        }
+    }
+
+    @NotNull
+    public static CandidateSnapshot read(@NotNull Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a candidate snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported candidate snapshot version " + version + " in " + file);
+            }
+            CandidateSnapshot snapshot = new CandidateSnapshot(in.readUTF());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                snapshot.put(new Entry(in.readUTF(), in.readUTF()));
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * A module or package importable under {@code name}. For packages the path is the one of their __init__.py.
+     */
+    public static final class Entry {
+        private final String path;
+        private final String name;
+
+        public Entry(@NotNull String path, @NotNull String name) {
+            this.path = path;
+            this.name = name;
+        }
+
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        @NotNull
+        public String getName() {
+            return name;
+        }
+    }
+}
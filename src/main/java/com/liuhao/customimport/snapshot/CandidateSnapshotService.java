@@ -0,0 +1,379 @@
+package com.liuhao.customimport.snapshot;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.execution.util.ExecUtil;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectUtil;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileSystemItem;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.GlobalSearchScopesCore;
+import com.jetbrains.python.psi.PyFile;
+import com.liuhao.customimport.settings.CustomImportSettingsState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link CandidateSnapshot} loaded for a project and keeps it in sync with the working tree.
+ * <p>
+ * On load, files changed since the snapshot revision (according to git) are marked dirty; afterwards the
+ * VFS listener marks created, deleted, moved and renamed files. Dirty paths are re-read lazily on the next lookup.
+ */
+public final class CandidateSnapshotService implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(CandidateSnapshotService.class);
+
+    private static final String INIT_FILE = "__init__.py";
+
+    private final Project project;
+    private final Set<String> dirtyPaths = ConcurrentHashMap.newKeySet();
+    private volatile CandidateSnapshot snapshot;
+    private volatile boolean exporting;
+
+    public CandidateSnapshotService(@NotNull Project project) {
+        this.project = project;
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void before(@NotNull List<? extends VFileEvent> events) {
+                markDirty(events);
+            }
+
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                markDirty(events);
+            }
+        });
+    }
+
+    public static CandidateSnapshotService getInstance(@NotNull Project project) {
+        return project.getService(CandidateSnapshotService.class);
+    }
+
+    /**
+     * Resolves the snapshot path from settings; relative paths are taken from the project base directory.
+     */
+    @Nullable
+    public static Path getConfiguredPath(@NotNull Project project) {
+        String configured = CustomImportSettingsState.getInstance().getCandidateSnapshotPath();
+        if (StringUtil.isEmptyOrSpaces(configured)) {
+            return null;
+        }
+        Path path = Paths.get(configured.trim());
+        if (path.isAbsolute() || project.getBasePath() == null) {
+            return path;
+        }
+        return Paths.get(project.getBasePath()).resolve(path);
+    }
+
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Loads a snapshot from disk and marks every file changed since its revision for reconciliation.
+     * The snapshot is not used if the changes cannot be determined.
+     */
+    public void load(@NotNull Path path) {
+        CandidateSnapshot loaded;
+        try {
+            loaded = CandidateSnapshot.read(path);
+        } catch (IOException e) {
+            LOG.warn("Could not read candidate snapshot " + path, e);
+            return;
+        }
+
+        List<String> changed = runGit("diff", "--name-only", "--relative", "-z", loaded.getRevision());
+        // Ignored files count too: generated modules (e.g. *_pb2.py) may exist here but not on the exporter's machine
+        List<String> untracked = runGit("ls-files", "--others", "-z", "--", "*.py");
+        if (changed == null || untracked == null) {
+            LOG.warn("Cannot determine changes since revision " + loaded.getRevision() + ", ignoring snapshot " + path);
+            return;
+        }
+
+        synchronized (this) {
+            dirtyPaths.clear();
+            dirtyPaths.addAll(changed);
+            dirtyPaths.addAll(untracked);
+            snapshot = loaded;
+        }
+        LOG.info("Loaded candidate snapshot " + path + " at revision " + loaded.getRevision() + " with "
+                + loaded.size() + " entries, " + (changed.size() + untracked.size()) + " paths to reconcile");
+    }
+
+    /**
+     * Builds a snapshot of the content under the project base directory, writes it to disk and starts using it.
+     * The working tree must be clean, since the snapshot is labelled with the HEAD revision.
+     *
+     * @return the number of exported entries
+     */
+    public int export(@NotNull Path path, @NotNull ProgressIndicator indicator) throws IOException {
+        List<String> head = runGit("rev-parse", "HEAD");
+        List<String> status = runGit("status", "--porcelain");
+        if (head == null || head.isEmpty() || status == null) {
+            throw new IOException("Cannot determine the repository revision of " + project.getBasePath());
+        }
+        if (!status.isEmpty()) {
+            throw new IOException("The working tree has " + status.size()
+                    + " uncommitted or untracked changes; commit or stash them before exporting");
+        }
+        CandidateSnapshot built = new CandidateSnapshot(head.get(0).trim());
+        VirtualFile baseDir = ProjectUtil.guessProjectDir(project);
+        if (baseDir == null) {
+            throw new IOException("Cannot find the base directory of " + project.getName());
+        }
+
+        // Record VFS changes from here on, and only clear the ones seen before the walk when done
+        exporting = true;
+        try {
+            Set<String> seenBeforeWalk = new HashSet<>(dirtyPaths);
+
+            // Entries are derived from paths alone, so this is a plain VFS walk without PSI
+            ReadAction.run(() -> ProjectFileIndex.getInstance(project).iterateContentUnderDirectory(baseDir, file -> {
+                indicator.checkCanceled();
+                CandidateSnapshot.Entry entry = createEntry(baseDir, file);
+                if (entry != null) {
+                    built.put(entry);
+                }
+                return true;
+            }));
+
+            built.write(path);
+            synchronized (this) {
+                dirtyPaths.removeAll(seenBeforeWalk);
+                snapshot = built;
+            }
+        } finally {
+            synchronized (this) {
+                exporting = false;
+                if (snapshot == null) {
+                    dirtyPaths.clear();
+                }
+            }
+        }
+        LOG.info("Exported candidate snapshot " + path + " at revision " + built.getRevision() + " with " + built.size() + " entries");
+        return built.size();
+    }
+
+    /**
+     * Looks up entries by name after reconciling dirty paths. Must be called inside a read action.
+     */
+    @NotNull
+    public synchronized List<CandidateSnapshot.Entry> findEntries(@NotNull String name) {
+        if (snapshot == null) {
+            return new ArrayList<>();
+        }
+        reconcile();
+        return new ArrayList<>(snapshot.findByName(name));
+    }
+
+    /**
+     * Finds the PSI item an entry points at: the module file, or the package directory for __init__.py.
+     */
+    @Nullable
+    public PsiFileSystemItem findItem(@NotNull CandidateSnapshot.Entry entry) {
+        VirtualFile baseDir = ProjectUtil.guessProjectDir(project);
+        VirtualFile file = baseDir != null ? baseDir.findFileByRelativePath(entry.getPath()) : null;
+        return file != null ? toItem(file) : null;
+    }
+
+    /**
+     * Returns the project content the snapshot does not cover (content roots outside the base directory),
+     * or null if it covers everything.
+     */
+    @Nullable
+    public GlobalSearchScope getUncoveredScope() {
+        VirtualFile baseDir = ProjectUtil.guessProjectDir(project);
+        if (baseDir == null) {
+            return GlobalSearchScope.projectScope(project);
+        }
+        for (VirtualFile root : ProjectRootManager.getInstance(project).getContentRoots()) {
+            if (!VfsUtilCore.isAncestor(baseDir, root, false)) {
+                GlobalSearchScope covered = GlobalSearchScopesCore.directoryScope(project, baseDir, true);
+                return GlobalSearchScope.projectScope(project).intersectWith(GlobalSearchScope.notScope(covered));
+            }
+        }
+        return null;
+    }
+
+    private void reconcile() {
+        if (dirtyPaths.isEmpty()) {
+            return;
+        }
+        VirtualFile baseDir = ProjectUtil.guessProjectDir(project);
+        if (baseDir == null) {
+            return;
+        }
+        List<String> paths = new ArrayList<>(dirtyPaths);
+        LOG.debug("Reconciling " + paths.size() + " changed paths with the candidate snapshot");
+
+        // Runs in a cancellable read action: a path only leaves the dirty set once it has been fully re-read
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        int done = 0;
+        try {
+            for (String path : paths) {
+                ProgressManager.checkCanceled();
+                VirtualFile changed = baseDir.findFileByRelativePath(path);
+                if (changed != null && !changed.isValid()) {
+                    changed = null;
+                }
+                if (mayHoldModules(path, changed)) {
+                    snapshot.removePath(path);
+                    if (changed != null) {
+                        fileIndex.iterateContentUnderDirectory(changed, file -> {
+                            CandidateSnapshot.Entry entry = createEntry(baseDir, file);
+                            if (entry != null) {
+                                snapshot.put(entry);
+                            }
+                            return true;
+                        });
+                    }
+                }
+                dirtyPaths.remove(path);
+                done++;
+            }
+        } catch (ProcessCanceledException e) {
+            dirtyPaths.addAll(paths.subList(done, paths.size()));
+            throw e;
+        }
+    }
+
+    /**
+     * Only Python files and directories (or deleted paths that look like directories) can affect entries.
+     */
+    private static boolean mayHoldModules(@NotNull String path, @Nullable VirtualFile file) {
+        if (path.endsWith(".py")) {
+            return true;
+        }
+        if (file != null) {
+            return file.isDirectory();
+        }
+        return path.lastIndexOf('.') <= path.lastIndexOf('/');
+    }
+
+    @Nullable
+    private static CandidateSnapshot.Entry createEntry(@NotNull VirtualFile baseDir, @NotNull VirtualFile file) {
+        if (file.isDirectory() || !"py".equals(file.getExtension())) {
+            return null;
+        }
+        String path = VfsUtilCore.getRelativePath(file, baseDir, '/');
+        VirtualFile parent = file.getParent();
+        if (path == null || parent == null) {
+            return null;
+        }
+        String name = INIT_FILE.equals(file.getName()) ? parent.getName() : file.getNameWithoutExtension();
+        return new CandidateSnapshot.Entry(path, name);
+    }
+
+    @Nullable
+    private PsiFileSystemItem toItem(@NotNull VirtualFile file) {
+        PsiManager psiManager = PsiManager.getInstance(project);
+        if (INIT_FILE.equals(file.getName())) {
+            VirtualFile parent = file.getParent();
+            return parent != null ? psiManager.findDirectory(parent) : null;
+        }
+        PsiFile psiFile = psiManager.findFile(file);
+        return psiFile instanceof PyFile ? psiFile : null;
+    }
+
+    private void markDirty(@NotNull List<? extends VFileEvent> events) {
+        String basePath = project.getBasePath();
+        if ((snapshot == null && !exporting) || basePath == null) {
+            return;
+        }
+        for (VFileEvent event : events) {
+            // getPath() is cached on first use, so moves, renames and copies need their paths spelled out
+            if (event instanceof VFileContentChangeEvent) {
+                continue;
+            }
+            if (event instanceof VFilePropertyChangeEvent) {
+                VFilePropertyChangeEvent propertyChange = (VFilePropertyChangeEvent) event;
+                if (propertyChange.isRename()) {
+                    markDirty(basePath, propertyChange.getOldPath());
+                    markDirty(basePath, propertyChange.getNewPath());
+                }
+            } else if (event instanceof VFileMoveEvent) {
+                markDirty(basePath, ((VFileMoveEvent) event).getOldPath());
+                markDirty(basePath, ((VFileMoveEvent) event).getNewPath());
+            } else if (event instanceof VFileCopyEvent) {
+                VFileCopyEvent copy = (VFileCopyEvent) event;
+                markDirty(basePath, copy.getNewParent().getPath() + "/" + copy.getNewChildName());
+            } else {
+                markDirty(basePath, event.getPath());
+            }
+        }
+    }
+
+    private void markDirty(@NotNull String basePath, @NotNull String path) {
+        if (path.startsWith(basePath + "/")) {
+            dirtyPaths.add(path.substring(basePath.length() + 1));
+        }
+    }
+
+    /**
+     * Runs git in the project base directory and returns the NUL or newline separated output, or null on failure.
+     */
+    @Nullable
+    private List<String> runGit(@NotNull String... parameters) {
+        String basePath = project.getBasePath();
+        if (basePath == null || !Files.isDirectory(Paths.get(basePath))) {
+            return null;
+        }
+        GeneralCommandLine commandLine = new GeneralCommandLine("git")
+                .withParameters(parameters)
+                .withWorkDirectory(basePath)
+                .withCharset(StandardCharsets.UTF_8);
+        try {
+            ProcessOutput output = ExecUtil.execAndGetOutput(commandLine);
+            if (output.getExitCode() != 0) {
+                LOG.debug("git " + String.join(" ", parameters) + " failed: " + output.getStderr());
+                return null;
+            }
+            List<String> result = new ArrayList<>();
+            for (String line : output.getStdout().split("[\0\n]")) {
+                if (!line.isEmpty()) {
+                    result.add(line);
+                }
+            }
+            return result;
+        } catch (ExecutionException e) {
+            LOG.debug("Could not run git " + String.join(" ", parameters), e);
+            return null;
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
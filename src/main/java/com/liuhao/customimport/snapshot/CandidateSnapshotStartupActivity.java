@@ -0,0 +1,32 @@
+package com.liuhao.customimport.snapshot;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.ProjectActivity;
+import kotlin.Unit;
+import kotlin.coroutines.Continuation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Loads the configured candidate snapshot when a project is opened, if the file exists.
+ */
+public class CandidateSnapshotStartupActivity implements ProjectActivity {
+
+    private static final Logger LOG = Logger.getInstance(CandidateSnapshotStartupActivity.class);
+
+    @Nullable
+    @Override
+    public Object execute(@NotNull Project project, @NotNull Continuation<? super Unit> continuation) {
+        Path path = CandidateSnapshotService.getConfiguredPath(project);
+        if (path == null || !Files.isRegularFile(path)) {
+            LOG.debug("No candidate snapshot to load for " + project.getName());
+            return Unit.INSTANCE;
+        }
+        CandidateSnapshotService.getInstance(project).load(path);
+        return Unit.INSTANCE;
+    }
+}
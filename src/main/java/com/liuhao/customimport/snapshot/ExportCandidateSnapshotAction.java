@@ -0,0 +1,70 @@
+package com.liuhao.customimport.snapshot;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * Writes the candidate snapshot of the current project to the path configured in settings,
+ * so it can be shared through the repository or a CI cache.
+ */
+public class ExportCandidateSnapshotAction extends AnAction {
+
+    private static final String TITLE = "Export Import Candidate Snapshot";
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) {
+            return;
+        }
+        Path path = CandidateSnapshotService.getConfiguredPath(project);
+        if (path == null) {
+            Messages.showErrorDialog(project, "Set a candidate snapshot file in the Custom Import Patterns settings first.", TITLE);
+            return;
+        }
+
+        new Task.Backgroundable(project, "Exporting import candidate snapshot", true) {
+            private int exported;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                try {
+                    exported = CandidateSnapshotService.getInstance(project).export(path, indicator);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                Messages.showInfoMessage(project, "Exported " + exported + " import candidates to " + path, TITLE);
+            }
+
+            @Override
+            public void onThrowable(@NotNull Throwable error) {
+                Throwable cause = error instanceof UncheckedIOException ? error.getCause() : error;
+                Messages.showErrorDialog(project, "Could not export the candidate snapshot: " + cause.getMessage(), TITLE);
+            }
+        }.queue();
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabled(e.getProject() != null);
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+}